@@ -1,7 +1,10 @@
 
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.CancellationException;
 import java.lang.Math;
 
 /**
@@ -47,6 +50,18 @@ public class CMP {
      * and the result.
      */
     private boolean letterRepating = false;
+    /**
+     * Upper bound on the number of low-order columns checked during the search, so
+     * the partial products always fit in a {@code long}.
+     */
+    private static final int MAX_LOW_COLUMNS = 9;
+    /**
+     * For each search index, the widest count of low-order columns whose letters
+     * are all assigned once that index is reached (0 if none become complete).
+     */
+    private int lowColumnsAt[];
+    /** Set from another thread to stop a search started through {@code solve}. */
+    private volatile boolean cancelled = false;
 
     /**
      * Starts the puzzle solver interaction with the user. It welcomes users and
@@ -166,6 +181,64 @@ public class CMP {
         if (equation.equalsIgnoreCase("-1"))
             return -1;
 
+        int status = parseEquation(equation);
+        if (status == 1) {
+            System.out.println("\n--------------------------------------------------------------------------");
+            System.out.println("|  This puzzle is impossible to solve with more than 10 unique letters,  |");
+            System.out.println("|  since there are only 10 digits available (0-9).                       |");
+            System.out.println("/-------------------------------------------------------------------------\n");
+        }
+        return status;
+    }
+
+    /**
+     * Solves a single equation in the form a * b * .. * n = z without any console
+     * interaction. This is meant for callers that drive the solver directly, such
+     * as {@link SolveServer}; a {@code CMP} instance should only be used for one
+     * equation this way. The number of backtracks is left in {@link #count}.
+     * 
+     * @param equation The equation to solve, already uppercased with the spaces
+     *                 removed.
+     * @return The letters mapped to their assigned digits in solving order, or
+     *         {@code null} if the puzzle has no solution.
+     * @throws IllegalArgumentException If the puzzle has more than 10 unique
+     *                                  letters.
+     * @throws CancellationException    If {@link #cancel()} was called before the
+     *                                  search finished.
+     */
+    public Map<Character, Integer> solve(String equation) {
+        if (parseEquation(equation) != 0)
+            throw new IllegalArgumentException("more than 10 unique letters");
+        if (!solvePuzzle(0)) {
+            if (cancelled)
+                throw new CancellationException();
+            return null;
+        }
+
+        Map<Character, Integer> solution = new LinkedHashMap<>();
+        for (Letter letter : letters) {
+            solution.put(letter.getCharacter(), letter.getDigit());
+        }
+        return solution;
+    }
+
+    /**
+     * Asks a running {@code solve} to stop as soon as possible. Safe to call from
+     * any thread.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Parses an equation and prepares the letters, their domains and the search
+     * order for {@code solvePuzzle}.
+     * 
+     * @param equation The equation, already uppercased with the spaces removed.
+     * @return int 1 if the puzzle has more than 10 unique letters, or 0 if the
+     *         puzzle is ready to be solved.
+     */
+    private int parseEquation(String equation) {
         // Split the equation into left-hand side (LHS) operands and right-hand side
         // (RHS) result.
         String leftHandSide[] = equation.split("=")[0].split("\\*");
@@ -193,13 +266,8 @@ public class CMP {
 
         // If there are more than 10 unique letters, the puzzle is unsolvable with
         // digits 0-9.
-        if (letters.length > 10) {
-            System.out.println("\n--------------------------------------------------------------------------");
-            System.out.println("|  This puzzle is impossible to solve with more than 10 unique letters,  |");
-            System.out.println("|  since there are only 10 digits available (0-9).                       |");
-            System.out.println("/-------------------------------------------------------------------------\n");
+        if (letters.length > 10)
             return 1;
-        }
 
         // Iterate over each word and letter in the equation to initialize Letter
         // objects with constraints.
@@ -305,6 +373,96 @@ public class CMP {
             }
 
         }
+
+        // Find out which low-order columns can be checked early during the search.
+        prepareLowColumns();
+        return 0;
+    }
+
+    /**
+     * Works out, for each search index, how many low-order columns become fully
+     * assigned at that point, so {@code solvePuzzle} can reject a partial
+     * assignment as soon as its lowest columns cannot match the product.
+     * 
+     * When the last letter of the product is not repeated, it is only assigned in
+     * {@code checkSolution}; it is ignored in the units column of the product, and
+     * any other occurrence stops the columns from being checked early.
+     */
+    private void prepareLowColumns() {
+        int longest = 0;
+        for (String word : words) {
+            longest = Math.max(longest, word.length());
+        }
+        int columns = Math.min(longest, MAX_LOW_COLUMNS);
+
+        lowColumnsAt = new int[letters.length + 1];
+        int mask = 0;
+        for (int k = 1; k <= columns; k++) {
+            boolean checkable = true;
+            for (int i = 0; i < words.length; i++) {
+                int j = words[i].length() - k;
+                if (j < 0)
+                    continue;
+                for (int l = 0; l < letters.length; l++) {
+                    if (letters[l].getCharacter() == words[i].charAt(j)) {
+                        if (!letterRepating && l == lastLetterIndex) {
+                            if (i == words.length - 1 && k == 1)
+                                break;
+                            checkable = false;
+                        }
+                        mask |= 1 << l;
+                        break;
+                    }
+                }
+            }
+            // The columns are cumulative, so once one cannot be checked the wider ones
+            // cannot either.
+            if (!checkable)
+                break;
+            // Every letter below the highest set bit is assigned before that index is
+            // passed; a wider column count overrides a narrower one at the same index.
+            lowColumnsAt[32 - Integer.numberOfLeadingZeros(mask)] = k;
+        }
+    }
+
+    /**
+     * Checks whether the lowest {@code k} columns of the current assignment are
+     * consistent, i.e. the product of the operands and the result agree modulo
+     * 10^k. If they do not, no assignment of the remaining letters can fix them.
+     * 
+     * @param k The number of low-order columns to check.
+     * @return {@code false} if the lowest {@code k} columns can never match;
+     *         {@code true} otherwise.
+     */
+    private boolean lowColumnsConsistent(int k) {
+        long modulus = 1;
+        for (int i = 0; i < k; i++) {
+            modulus *= 10;
+        }
+
+        long product = 1, result = 0;
+        for (int i = 0; i < words.length; i++) {
+            long value = 0;
+            for (int j = Math.max(0, words[i].length() - k); j < words[i].length(); j++) {
+                value *= 10;
+                // The units digit of the product is left out when it is only set in
+                // checkSolution.
+                if (!letterRepating && i == words.length - 1 && j == words[i].length() - 1)
+                    continue;
+                for (int l = 0; l < letters.length; l++) {
+                    if (letters[l].getCharacter() == words[i].charAt(j)) {
+                        value += letters[l].getDigit();
+                        break;
+                    }
+                }
+            }
+            if (i < words.length - 1)
+                product = product * value % modulus;
+            else
+                result = value;
+        }
+
+        return letterRepating ? product == result : product / 10 == result / 10;
     }
 
     /**
@@ -322,6 +480,15 @@ public class CMP {
      */
     private boolean solvePuzzle(int index) {
 
+        // Give up on the whole search once it has been cancelled.
+        if (cancelled)
+            return false;
+
+        // Prune: If the lowest columns have just been fully assigned and they cannot
+        // match the product, nothing below this point can lead to a solution.
+        if (lowColumnsAt[index] > 0 && !lowColumnsConsistent(lowColumnsAt[index]))
+            return false;
+
         // Base case: If the index has reached the length of the letters array, all
         // letters have been assigned digits.
 
@@ -388,7 +555,8 @@ public class CMP {
     private boolean checkSolution() {
         // Initialize variables to hold the computed numerical values of the left and
         // right sides of the equation, and for intermediate calculations.
-        int leftSide = 0, rightSide = 0, currentValue = 0, lastDigitValue = 1;
+        long leftSide = 0, rightSide = 0, currentValue = 0;
+        int lastDigitValue = 1;
 
         // Optimization: If the last letter is not supposed to repeat (based on the
         // puzzle's setup),
@@ -421,8 +589,8 @@ public class CMP {
             for (int j = 0; j < words[i].length(); j++) {
                 for (int k = 0; k < letters.length; k++) {
                     if (letters[k].getCharacter() == words[i].charAt(j)) {
-                        // Convert each letter to its assigned digit and calculate its contribution to the word's total value.
-                        currentValue += letters[k].getDigit() * Math.pow(10, words[i].length() - j - 1);
+                        // Convert each letter to its assigned digit and append it to the word's total value.
+                        currentValue = currentValue * 10 + letters[k].getDigit();
                         break;
                     }
                 }
@@ -449,14 +617,15 @@ public class CMP {
      * 
      * @return The numerical value of the left-hand side of the equation.
      */
-    private int leftHandSideValue() {
-        int leftSide = 0, rightSide = 0, currentValue = 0, lastDigitValue = 1;
+    private long leftHandSideValue() {
+        long leftSide = 0, rightSide = 0, currentValue = 0;
+        int lastDigitValue = 1;
 
         for (int i = 0; i < words.length - 1; i++) {
             for (int j = 0; j < words[i].length(); j++) {
                 for (int k = 0; k < letters.length; k++) {
                     if (letters[k].getCharacter() == words[i].charAt(j)) {
-                        currentValue += letters[k].getDigit() * Math.pow(10, words[i].length() - j - 1);
+                        currentValue = currentValue * 10 + letters[k].getDigit();
                         break;
                     }
                 }
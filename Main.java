@@ -1,5 +1,13 @@
+import java.io.IOException;
+import java.util.Arrays;
+
 public class Main {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        // Run as a local HTTP service instead of the console loop.
+        if (args.length > 0 && args[0].equals("--server")) {
+            SolveServer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         MainFrame test = new MainFrame();
         test.initialize();
         CMP cmp = new CMP();
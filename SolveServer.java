@@ -0,0 +1,508 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code SolveServer} class runs the Cryptarithmetic Puzzle Solver as a
+ * long-lived local HTTP service, so callers do not have to start a JVM and
+ * drive the console loop in {@link CMP#start()} for every puzzle.
+ *
+ * The service listens on the loopback address only and offers:
+ * - {@code POST /solve}: the body is a single equation; the response is one
+ * JSON result.
+ * - {@code POST /batch}: the body holds one equation per line; the response is
+ * a JSON array of results in the same order.
+ * - {@code GET /metrics}: request and search latency histograms and counters in
+ * the Prometheus text format.
+ *
+ * Both solve endpoints accept a {@code timeout} query parameter in milliseconds.
+ * Requests are handled on virtual threads when the runtime supports them, while
+ * the searches themselves run on a fixed pool sized to the CPU count with a
+ * bounded queue; when that queue is full the request is turned away with 503.
+ * Identical equations that are in flight at the same time share one search,
+ * and a search is cancelled once every request waiting for it has timed out.
+ */
+public class SolveServer {
+
+    /** Port used when none is given on the command line. */
+    private static final int DEFAULT_PORT = 8080;
+    /** Time a request waits for its searches when it does not set a timeout. */
+    private static final long DEFAULT_TIMEOUT_MILLIS = 10_000;
+    /** Upper bound on the timeout a request may ask for. */
+    private static final long MAX_TIMEOUT_MILLIS = 60_000;
+    /** Number of searches that may wait for a free solver thread. */
+    private static final int QUEUE_CAPACITY = 64;
+    /** Accepted shape of an equation once it is uppercased and the spaces are removed. */
+    private static final String EQUATION_PATTERN = "[A-Z]+(\\*[A-Z]+)*=[A-Z]+";
+    /**
+     * Largest number of digits the operands together, or the product alone, may
+     * have so that every value the solver computes fits in a {@code long}.
+     */
+    private static final int MAX_DIGITS = 18;
+
+    /** Pool running the CPU-bound searches, with a bounded queue for admission control. */
+    private final ThreadPoolExecutor solvers;
+    /**
+     * Searches currently queued or running, keyed by their normalized equation.
+     * Also the lock for joining and abandoning a search.
+     */
+    private final Map<String, Search> inFlight = new HashMap<>();
+    /** End-to-end latency of the solve and batch requests. */
+    private final Histogram requestLatency = new Histogram();
+    /** Time spent in the solver for each search. */
+    private final Histogram searchLatency = new Histogram();
+    /** Number of equations that joined a search already in flight. */
+    private final LongAdder coalesced = new LongAdder();
+    /** Number of equations turned away because the search queue was full. */
+    private final LongAdder rejected = new LongAdder();
+    /** Number of equations whose result was not ready within the request timeout. */
+    private final LongAdder timedOut = new LongAdder();
+
+    /**
+     * Creates a server whose searches run on {@code threads} solver threads.
+     *
+     * @param threads The number of searches that may run at the same time.
+     */
+    public SolveServer(int threads) {
+        solvers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY));
+    }
+
+    /**
+     * Starts the service on the loopback address.
+     *
+     * @param args An optional port number; {@value #DEFAULT_PORT} is used
+     *             otherwise.
+     * @throws IOException If the server socket cannot be bound.
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        SolveServer server = new SolveServer(Runtime.getRuntime().availableProcessors());
+
+        HttpServer http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        http.createContext("/solve", exchange -> server.handleSolve(exchange, false));
+        http.createContext("/batch", exchange -> server.handleSolve(exchange, true));
+        http.createContext("/metrics", server::handleMetrics);
+        ExecutorService executor = requestExecutor();
+        http.setExecutor(executor);
+        http.start();
+        System.out.println("Cryptarithmetic Puzzle Solver listening on http://localhost:" + port);
+        System.out.println("Requests run on " + (executor instanceof ThreadPoolExecutor
+                ? "a cached thread pool (virtual threads need Java 21+)"
+                : "virtual threads"));
+    }
+
+    /**
+     * Creates the executor for the HTTP requests: one virtual thread per request
+     * when the runtime has them (Java 21+), a cached thread pool otherwise. The
+     * method is looked up reflectively so the class still compiles on older JDKs.
+     *
+     * @return The executor for the HTTP requests.
+     */
+    private static ExecutorService requestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * Handles {@code /solve} and {@code /batch}. Every equation is submitted
+     * before any result is awaited, so the equations of a batch are searched in
+     * parallel and all of them share the deadline of the request.
+     *
+     * @param exchange The HTTP exchange.
+     * @param batch    {@code true} to read one equation per line and reply with
+     *                 an array; {@code false} to treat the whole body as one
+     *                 equation.
+     * @throws IOException If the response cannot be written.
+     */
+    private void handleSolve(HttpExchange exchange, boolean batch) throws IOException {
+        long startTime = System.nanoTime();
+        try {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                send(exchange, 405, "{\"error\":\"use POST\"}");
+                return;
+            }
+
+            long timeout;
+            try {
+                timeout = timeoutMillis(exchange.getRequestURI().getQuery());
+            } catch (NumberFormatException e) {
+                send(exchange, 400, "{\"error\":\"invalid timeout\"}");
+                return;
+            }
+            long deadline = startTime + TimeUnit.MILLISECONDS.toNanos(timeout);
+
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            List<String> equations = new ArrayList<>();
+            if (batch) {
+                for (String line : body.split("\\R")) {
+                    if (!line.isBlank())
+                        equations.add(line.toUpperCase().replaceAll("\\s", ""));
+                }
+            } else {
+                equations.add(body.toUpperCase().replaceAll("\\s", ""));
+            }
+
+            // Submit everything first, then collect the results.
+            List<Search> searches = new ArrayList<>();
+            for (String equation : equations) {
+                searches.add(submit(equation));
+            }
+            List<Result> results = new ArrayList<>();
+            for (Search search : searches) {
+                results.add(await(search, deadline));
+            }
+
+            if (batch) {
+                StringBuilder json = new StringBuilder("[");
+                for (int i = 0; i < results.size(); i++) {
+                    if (i > 0)
+                        json.append(',');
+                    json.append(results.get(i).toJson());
+                }
+                send(exchange, 200, json.append(']').toString());
+            } else {
+                Result result = results.get(0);
+                send(exchange, result.httpStatus(), result.toJson());
+            }
+        } finally {
+            requestLatency.record(System.nanoTime() - startTime);
+            exchange.close();
+        }
+    }
+
+    /**
+     * Reads the {@code timeout} query parameter.
+     *
+     * @param query The raw query string of the request, may be {@code null}.
+     * @return The timeout in milliseconds, clamped to {@value #MAX_TIMEOUT_MILLIS}.
+     * @throws NumberFormatException If the parameter is not a positive number.
+     */
+    private static long timeoutMillis(String query) {
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                if (parameter.startsWith("timeout=")) {
+                    long timeout = Long.parseLong(parameter.substring("timeout=".length()));
+                    if (timeout <= 0)
+                        throw new NumberFormatException("timeout must be positive");
+                    return Math.min(timeout, MAX_TIMEOUT_MILLIS);
+                }
+            }
+        }
+        return DEFAULT_TIMEOUT_MILLIS;
+    }
+
+    /**
+     * Starts the search for an equation, or joins the search already in flight for
+     * the same equation. Every call must be matched by a call to {@link #await}.
+     *
+     * @param equation The equation, uppercased with the spaces removed.
+     * @return The search; its future completes exceptionally with a
+     *         {@link RejectedExecutionException} if the search queue was full.
+     */
+    private Search submit(String equation) {
+        Search search = new Search(equation);
+        if (!equation.matches(EQUATION_PATTERN) || !fitsInLong(equation)) {
+            search.future.complete(new Result(equation, "invalid", null, 0, 0));
+            return search;
+        }
+
+        synchronized (inFlight) {
+            Search existing = inFlight.get(equation);
+            if (existing != null) {
+                coalesced.increment();
+                existing.waiters++;
+                return existing;
+            }
+
+            try {
+                solvers.execute(search);
+                search.waiters = 1;
+                inFlight.put(equation, search);
+            } catch (RejectedExecutionException e) {
+                rejected.increment();
+                search.future.completeExceptionally(e);
+            }
+        }
+        return search;
+    }
+
+    /**
+     * Waits for a search until the deadline of the request. When the last request
+     * waiting for a search gives up, the search is taken off the queue, or told to
+     * stop if it is already running, so that it no longer holds a solver thread or
+     * a queue slot.
+     *
+     * @param search   The search returned by {@link #submit}.
+     * @param deadline The deadline of the request, in {@link System#nanoTime()}
+     *                 units.
+     * @return The result of the search, or a result describing why there is none.
+     */
+    private Result await(Search search, long deadline) {
+        try {
+            return search.future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            timedOut.increment();
+            abandon(search);
+            return new Result(search.equation, "timeout", null, 0, 0);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RejectedExecutionException)
+                return new Result(search.equation, "rejected", null, 0, 0);
+            return new Result(search.equation, "error", null, 0, 0);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abandon(search);
+            return new Result(search.equation, "error", null, 0, 0);
+        }
+    }
+
+    /**
+     * Checks that the solver cannot overflow on an equation: the product of the
+     * operands has at most as many digits as the operands together.
+     *
+     * @param equation The equation, already matching {@link #EQUATION_PATTERN}.
+     * @return {@code true} if every value stays below 10^{@value #MAX_DIGITS}.
+     */
+    private static boolean fitsInLong(String equation) {
+        int equals = equation.indexOf('=');
+        int operandDigits = equals - (equation.substring(0, equals).split("\\*").length - 1);
+        return operandDigits <= MAX_DIGITS && equation.length() - equals - 1 <= MAX_DIGITS;
+    }
+
+    /**
+     * Drops one waiter from a search, and cancels the search if nobody is left
+     * waiting for it. A duplicate that arrives before that keeps the search alive.
+     *
+     * @param search The search the caller no longer waits for.
+     */
+    private void abandon(Search search) {
+        synchronized (inFlight) {
+            if (--search.waiters > 0 || search.future.isDone())
+                return;
+            inFlight.remove(search.equation, search);
+            solvers.remove(search);
+            search.cmp.cancel();
+            search.future.completeExceptionally(new CancellationException());
+        }
+    }
+
+    /**
+     * One search on the solver pool, shared by every request that asked for the
+     * same equation while it was in flight.
+     */
+    private class Search implements Runnable {
+        private final String equation;
+        private final CMP cmp = new CMP();
+        private final CompletableFuture<Result> future = new CompletableFuture<>();
+        /** Number of requests still waiting for the result, guarded by {@code inFlight}. */
+        private int waiters;
+
+        Search(String equation) {
+            this.equation = equation;
+        }
+
+        @Override
+        public void run() {
+            long startTime = System.nanoTime();
+            try {
+                Map<Character, Integer> solution = cmp.solve(equation);
+                long duration = System.nanoTime() - startTime;
+                searchLatency.record(duration);
+                future.complete(new Result(equation, solution == null ? "unsolvable" : "solved", solution,
+                        cmp.count, duration));
+            } catch (IllegalArgumentException e) {
+                // More than 10 unique letters.
+                future.complete(new Result(equation, "invalid", null, 0, 0));
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            } finally {
+                synchronized (inFlight) {
+                    inFlight.remove(equation, this);
+                }
+            }
+        }
+    }
+
+    /**
+     * Handles {@code /metrics} by writing the latency histograms and counters in
+     * the Prometheus text format.
+     *
+     * @param exchange The HTTP exchange.
+     * @throws IOException If the response cannot be written.
+     */
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        StringBuilder text = new StringBuilder();
+        requestLatency.write(text, "cmp_request_seconds", "End-to-end latency of solve and batch requests.");
+        searchLatency.write(text, "cmp_search_seconds", "Time spent in the solver per search.");
+        writeCounter(text, "cmp_searches_coalesced_total", "Equations that joined a search in flight.", coalesced);
+        writeCounter(text, "cmp_searches_rejected_total", "Equations rejected because the queue was full.", rejected);
+        writeCounter(text, "cmp_searches_timed_out_total", "Equations not solved within the request timeout.", timedOut);
+        text.append("# HELP cmp_searches_queued Searches waiting for a solver thread.\n");
+        text.append("# TYPE cmp_searches_queued gauge\n");
+        text.append("cmp_searches_queued ").append(solvers.getQueue().size()).append('\n');
+
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4");
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void writeCounter(StringBuilder text, String name, String help, LongAdder counter) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(" counter\n");
+        text.append(name).append(' ').append(counter.sum()).append('\n');
+    }
+
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Outcome of one equation. The status is one of {@code solved},
+     * {@code unsolvable}, {@code invalid}, {@code timeout}, {@code rejected} or
+     * {@code error}.
+     */
+    private static class Result {
+        private final String equation;
+        private final String status;
+        private final Map<Character, Integer> solution;
+        private final int backtracks;
+        private final long nanos;
+
+        Result(String equation, String status, Map<Character, Integer> solution, int backtracks, long nanos) {
+            this.equation = equation;
+            this.status = status;
+            this.solution = solution;
+            this.backtracks = backtracks;
+            this.nanos = nanos;
+        }
+
+        int httpStatus() {
+            switch (status) {
+                case "invalid":
+                    return 400;
+                case "rejected":
+                    return 503;
+                case "timeout":
+                    return 504;
+                case "error":
+                    return 500;
+                default:
+                    return 200;
+            }
+        }
+
+        String toJson() {
+            StringBuilder json = new StringBuilder("{\"equation\":");
+            quote(json, equation);
+            json.append(",\"status\":\"").append(status).append('"');
+            if (solution != null) {
+                // Write the equation again with the digits in place of the letters.
+                json.append(",\"solution\":\"");
+                for (int i = 0; i < equation.length(); i++) {
+                    Integer digit = solution.get(equation.charAt(i));
+                    json.append(digit == null ? equation.charAt(i) : (char) ('0' + digit));
+                }
+                json.append("\",\"letters\":{");
+                boolean first = true;
+                for (Map.Entry<Character, Integer> entry : solution.entrySet()) {
+                    if (!first)
+                        json.append(',');
+                    json.append('"').append(entry.getKey()).append("\":").append(entry.getValue());
+                    first = false;
+                }
+                json.append('}');
+            }
+            if (status.equals("solved") || status.equals("unsolvable")) {
+                json.append(",\"backtracks\":").append(backtracks);
+                json.append(",\"seconds\":").append(nanos / 1_000_000_000.0);
+            }
+            return json.append('}').toString();
+        }
+
+        private static void quote(StringBuilder json, String value) {
+            json.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"' || c == '\\')
+                    json.append('\\').append(c);
+                else if (c < 0x20)
+                    json.append(String.format("\\u%04x", (int) c));
+                else
+                    json.append(c);
+            }
+            json.append('"');
+        }
+    }
+
+    /**
+     * Latency histogram with fixed buckets from 1 ms to 10 s, safe to update from
+     * many threads.
+     */
+    private static class Histogram {
+        /** Upper bounds of the buckets, in seconds. */
+        private static final double BOUNDS[] = { 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5,
+                5, 10 };
+
+        /** Observations per bucket; the last slot holds the ones above every bound. */
+        private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS.length + 1);
+        private final LongAdder sumNanos = new LongAdder();
+
+        void record(long nanos) {
+            double seconds = nanos / 1_000_000_000.0;
+            int i = 0;
+            while (i < BOUNDS.length && seconds > BOUNDS[i]) {
+                i++;
+            }
+            buckets.incrementAndGet(i);
+            sumNanos.add(nanos);
+        }
+
+        void write(StringBuilder text, String name, String help) {
+            text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+            text.append("# TYPE ").append(name).append(" histogram\n");
+            // Prometheus buckets are cumulative.
+            long cumulative = 0;
+            for (int i = 0; i < BOUNDS.length; i++) {
+                cumulative += buckets.get(i);
+                text.append(name).append("_bucket{le=\"").append(BOUNDS[i]).append("\"} ").append(cumulative)
+                        .append('\n');
+            }
+            cumulative += buckets.get(BOUNDS.length);
+            text.append(name).append("_bucket{le=\"+Inf\"} ").append(cumulative).append('\n');
+            text.append(name).append("_sum ").append(sumNanos.sum() / 1_000_000_000.0).append('\n');
+            text.append(name).append("_count ").append(cumulative).append('\n');
+        }
+    }
+}